@@ -0,0 +1,34 @@
+package com.example.demo.config;
+
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Spring MVC already registers CBOR ({@code application/cbor}) and Smile ({@code application/x-jackson-smile})
+ * converters once their Jackson modules are on the classpath. These beans replace those defaults with
+ * converters built from Spring Boot's {@link Jackson2ObjectMapperBuilder}, so they share the JSON settings,
+ * and enable {@code WRITE_DATES_AS_TIMESTAMPS} so dates are written as numeric arrays instead of ISO strings.
+ */
+@Configuration
+public class BinaryFormatConfig {
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(binary(builder).factory(new CBORFactory()).build());
+    }
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(binary(builder).factory(new SmileFactory()).build());
+    }
+
+    private static Jackson2ObjectMapperBuilder binary(Jackson2ObjectMapperBuilder builder) {
+        return builder.createXmlMapper(false).featuresToEnable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+}
@@ -7,6 +7,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 @RestController
@@ -16,6 +18,11 @@ public class FilterController {
     private static final Logger logger = LoggerFactory.getLogger(FilterController.class);
     private final ServiceFactory services;
     public static class Resp { public String filter; }
+    public static class AggregateReq {
+        public String filter;
+        public List<String> groupBy = new ArrayList<>();
+        public List<String> aggregates = new ArrayList<>();
+    }
 
     public FilterController(ServiceFactory serviceFactory) {
         this.services = serviceFactory;
@@ -49,6 +56,17 @@ public class FilterController {
         }
     }
 
+    @PostMapping("/aggregate")
+    public ResponseEntity<?> aggregate(@PathVariable String entity, @RequestBody AggregateReq request) {
+        logger.info("Aggregating [{}] with {} by {}", entity, request.filter, request.groupBy);
+        try {
+            BaseService<?> service = services.getService(entity);
+            return ResponseEntity.ok(service.aggregate(request.filter, request.groupBy, request.aggregates));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Error processing request: " + e.getMessage());
+        }
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<?> getEntityById(@PathVariable String entity, @PathVariable Long id) {
         logger.info("Calling [{}] with id={}", entity, id);
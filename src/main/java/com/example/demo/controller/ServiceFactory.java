@@ -5,7 +5,14 @@ import com.example.demo.entity.Metadata;
 import com.example.demo.repository.ContentRepository;
 import com.example.demo.repository.MetadataRepository;
 import com.example.demo.service.BaseService;
+import com.example.demo.service.SingleFlight;
+import com.example.demo.translator.QueryPlanner;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -14,10 +21,17 @@ public class ServiceFactory {
 
     private final Map<String, BaseService<?>> services = new HashMap<>();
 
-    public ServiceFactory(ContentRepository contentRepository, MetadataRepository metadataRepository) {
+    public ServiceFactory(ContentRepository contentRepository, MetadataRepository metadataRepository,
+                          EntityManager entityManager, TaskExecutor taskExecutor,
+                          @Value("${cel.planner.statistics-ttl:PT5M}") Duration statisticsTtl,
+                          @Value("${cel.filter.coalescing-timeout:PT30S}") Duration coalescingTimeout) {
+        // Statistics are shared across entities and refreshed on Boot's task executor once per TTL
+        QueryPlanner planner = new QueryPlanner(entityManager, statisticsTtl, taskExecutor);
         // Map entity names to their respective services
-        this.services.put("content", new BaseService<>(contentRepository, Content.class));
-        this.services.put("metadata", new BaseService<>(metadataRepository, Metadata.class));
+        this.services.put("content", new BaseService<>(contentRepository, entityManager, Content.class, planner,
+                new SingleFlight<>(coalescingTimeout)));
+        this.services.put("metadata", new BaseService<>(metadataRepository, entityManager, Metadata.class, planner,
+                new SingleFlight<>(coalescingTimeout)));
     }
 
     public BaseService<?> getService(String entity) {
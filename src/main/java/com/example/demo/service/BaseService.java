@@ -1,20 +1,64 @@
 package com.example.demo.service;
 
+import com.example.demo.translator.QueryPlanner;
 import com.example.demo.translator.Translator;
+import dev.cel.common.CelValidationException;
+import dev.cel.parser.CelParser;
+import dev.cel.parser.CelParserFactory;
+import dev.cel.parser.CelUnparser;
+import dev.cel.parser.CelUnparserFactory;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+
+import javax.persistence.EntityManager;
+import javax.persistence.OneToMany;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 public class BaseService<T> {
 
+    private static final CelParser PARSER = CelParserFactory.standardCelParserBuilder().build();
+    private static final CelUnparser UNPARSER = CelUnparserFactory.newUnparser();
+    private static final Pattern FUNCTION_CALL = Pattern.compile("^(\\w+)\\(\\s*([\\w.]+)\\s*\\)$");
+
     private final JpaRepository<T, Long> repository;
+    private final EntityManager entityManager; // Used for aggregate queries
     private final Class<T> entityClass; // Store the entity class
+    private final QueryPlanner planner;
+    private final SingleFlight<String, List<T>> filterFlights; // Identical concurrent filters share one query
+    private final List<String> fetchedCollections; // @OneToMany fields fetched with the filter query
 
-    public BaseService(JpaRepository<T, Long> repository, Class<T> entityClass) {
+    public BaseService(JpaRepository<T, Long> repository, EntityManager entityManager, Class<T> entityClass,
+                       QueryPlanner planner, SingleFlight<String, List<T>> filterFlights) {
         this.repository = repository;
+        this.entityManager = Objects.requireNonNull(entityManager, "entityManager");
         this.entityClass = entityClass;
+        this.planner = planner;
+        this.filterFlights = filterFlights;
+        this.fetchedCollections = Arrays.stream(entityClass.getDeclaredFields())
+                .filter(field -> field.isAnnotationPresent(OneToMany.class))
+                .map(Field::getName)
+                .collect(Collectors.toList());
     }
 
     public List<T> findAll() {
@@ -25,8 +69,119 @@ public class BaseService<T> {
         return repository.findById(id);
     }
 
+    /**
+     * Runs the filter, sharing one compile and query between identical requests that are in flight at the
+     * same time. The returned list and its entities may be shared between callers and must not be modified.
+     */
     public List<T> filterEntity(String celExpression) throws Exception {
-        Specification<T> spec = Translator.translate(celExpression, entityClass); // Pass entityClass
-        return ((JpaSpecificationExecutor<T>) repository).findAll(spec);
+        return filterFlights.execute(flightKey(celExpression), () -> {
+            Specification<T> spec = Translator.translate(celExpression, entityClass, planner); // Pass entityClass
+            return ((JpaSpecificationExecutor<T>) repository).findAll(spec.and(fetchCollections()));
+        });
+    }
+
+    /**
+     * Key under which identical filters are coalesced: the entity plus the filter parsed and unparsed by CEL,
+     * so whitespace and comments do not matter but anything that changes the expression does.
+     */
+    public String flightKey(String celExpression) throws CelValidationException {
+        return entityClass.getSimpleName() + ":" + UNPARSER.unparse(PARSER.parse(celExpression).getAst());
+    }
+
+    /**
+     * Runs one GROUP BY query over the entities matching the filter, so only aggregated rows leave the database.
+     * Group-by entries are dotted paths or {@code day(path)} for per-day buckets; aggregates are {@code count}
+     * (number of matching entities), {@code count(path)}, {@code countDistinct(path)}, {@code min(path)} and {@code max(path)}.
+     * Each row maps the group-by and aggregate labels to their values.
+     */
+    public List<Map<String, Object>> aggregate(String celExpression, List<String> groupBy, List<String> aggregates) {
+        List<String> groupLabels = groupBy == null ? List.of() : trim(groupBy);
+        List<String> aggregateLabels = aggregates == null || aggregates.isEmpty() ? List.of("count") : trim(aggregates);
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<T> root = query.from(entityClass);
+        Map<String, Join<T, ?>> joins = new HashMap<>(); // Joins used for grouping, separate from the filter's
+
+        List<Expression<?>> groups = new ArrayList<>();
+        for (String group : groupLabels) {
+            groups.add(groupExpression(group, root, joins));
+        }
+        List<Selection<?>> selections = new ArrayList<>(groups);
+        for (String aggregate : aggregateLabels) {
+            selections.add(aggregateExpression(aggregate, root, joins, cb));
+        }
+        query.multiselect(selections);
+        if (celExpression != null && !celExpression.trim().isEmpty()) {
+            query.where(Translator.translateForAggregation(celExpression, entityClass, planner, root, query, cb));
+        }
+        query.groupBy(groups);
+        query.orderBy(groups.stream().map(cb::asc).collect(Collectors.toList()));
+
+        List<String> labels = new ArrayList<>(groupLabels);
+        labels.addAll(aggregateLabels);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Tuple tuple : entityManager.createQuery(query).getResultList()) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int i = 0; i < labels.size(); i++) {
+                Object value = tuple.get(i);
+                row.put(labels.get(i), value instanceof java.sql.Date ? ((java.sql.Date) value).toLocalDate() : value);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private Expression<?> groupExpression(String group, Root<T> root, Map<String, Join<T, ?>> joins) {
+        Matcher call = FUNCTION_CALL.matcher(group);
+        if (!call.matches()) {
+            return Translator.resolvePath(root, joins, group);
+        }
+        if (call.group(1).equals("day")) {
+            return Translator.resolvePath(root, joins, call.group(2)).as(java.sql.Date.class);
+        }
+        throw new IllegalArgumentException("Unsupported group-by function: " + call.group(1));
+    }
+
+    private Expression<?> aggregateExpression(String aggregate, Root<T> root, Map<String, Join<T, ?>> joins,
+                                              CriteriaBuilder cb) {
+        if (aggregate.equals("count")) {
+            return cb.countDistinct(root); // Matching entities, even when grouping joins a collection
+        }
+        Matcher call = FUNCTION_CALL.matcher(aggregate);
+        if (!call.matches()) {
+            throw new IllegalArgumentException("Unsupported aggregate: " + aggregate);
+        }
+        Path<Comparable<Object>> path = Translator.resolvePath(root, joins, call.group(2));
+        switch (call.group(1)) {
+            case "count":
+                return cb.count(path);
+            case "countDistinct":
+                return cb.countDistinct(path);
+            case "min":
+                return cb.least(path);
+            case "max":
+                return cb.greatest(path);
+            default:
+                throw new IllegalArgumentException("Unsupported aggregate function: " + call.group(1));
+        }
+    }
+
+    private static List<String> trim(List<String> values) {
+        return values.stream().map(String::trim).collect(Collectors.toList());
+    }
+
+    /**
+     * Fetch joins the @OneToMany collections in the filter query itself, so the shared entities are fully
+     * loaded when they reach waiters and serialization never needs another request's persistence context.
+     */
+    private Specification<T> fetchCollections() {
+        return (root, query, cb) -> {
+            if (query.getResultType() != Long.class && !fetchedCollections.isEmpty()) {
+                fetchedCollections.forEach(collection -> root.fetch(collection, JoinType.LEFT));
+                query.distinct(true);
+            }
+            return null;
+        };
     }
-}
\ No newline at end of file
+}
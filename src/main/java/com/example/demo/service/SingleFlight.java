@@ -0,0 +1,83 @@
+package com.example.demo.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coalesces concurrent calls that share a key: the first caller (the leader) runs the loader on its own
+ * thread and every caller arriving while it is in flight waits for the same result or exception.
+ * Nothing is cached; once the leader finishes the next call for the key starts a new execution.
+ * Only waiters are bounded by the timeout: the leader's loader runs without a time limit, so a hung
+ * leader keeps absorbing new arrivals for its key and each of them waits the full timeout.
+ */
+public class SingleFlight<K, V> {
+    private static final Logger logger = LoggerFactory.getLogger(SingleFlight.class);
+
+    private final Map<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+    private final Duration timeout;
+
+    public SingleFlight(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    public V execute(K key, Callable<V> loader) throws Exception {
+        Flight<V> flight = new Flight<>();
+        Flight<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            logger.info("Joining in-flight request for {}", key);
+            existing.waiters.incrementAndGet();
+            try {
+                return await(key, existing.result);
+            } finally {
+                existing.waiters.decrementAndGet();
+            }
+        }
+        try {
+            V result = loader.call();
+            flight.result.complete(result);
+            return result;
+        } catch (Throwable t) {
+            flight.result.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Number of callers currently waiting on another caller's in-flight execution, across all keys.
+     * Intended for tests that need to know a waiter has joined before releasing the leader.
+     */
+    public int waiterCount() {
+        return inFlight.values().stream().mapToInt(flight -> flight.waiters.get()).sum();
+    }
+
+    private V await(K key, CompletableFuture<V> flight) throws Exception {
+        try {
+            return flight.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new TimeoutException("Timed out after " + timeout + " waiting for in-flight request " + key);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    private static class Flight<V> {
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private final AtomicInteger waiters = new AtomicInteger();
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.demo.translator;
+
+import java.time.Instant;
+
+/**
+ * Snapshot of the statistics collected for a single entity path (e.g. {@code name} or {@code metadata.datakey}).
+ */
+public class ColumnStatistics {
+    private final long rowCount;
+    private final long distinctCount;
+    private final double fanOut;
+    private final Object min;
+    private final Object max;
+    private final Instant collectedAt;
+
+    public ColumnStatistics(long rowCount, long distinctCount, double fanOut, Object min, Object max, Instant collectedAt) {
+        this.rowCount = rowCount;
+        this.distinctCount = distinctCount;
+        this.fanOut = fanOut;
+        this.min = min;
+        this.max = max;
+        this.collectedAt = collectedAt;
+    }
+
+    static ColumnStatistics unknown(Instant collectedAt) {
+        return new ColumnStatistics(0, 0, 0, null, null, collectedAt);
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public long getDistinctCount() {
+        return distinctCount;
+    }
+
+    /**
+     * Average number of rows per root entity; 1 for plain columns, rows-per-parent for collection paths.
+     */
+    public double getFanOut() {
+        return fanOut;
+    }
+
+    public Object getMin() {
+        return min;
+    }
+
+    public Object getMax() {
+        return max;
+    }
+
+    public Instant getCollectedAt() {
+        return collectedAt;
+    }
+
+    public boolean isKnown() {
+        return rowCount > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnStatistics{" +
+                "rowCount=" + rowCount +
+                ", distinctCount=" + distinctCount +
+                ", fanOut=" + fanOut +
+                ", min=" + min +
+                ", max=" + max +
+                '}';
+    }
+}
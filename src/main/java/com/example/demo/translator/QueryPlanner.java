@@ -0,0 +1,283 @@
+package com.example.demo.translator;
+
+import dev.cel.common.ast.CelConstant;
+import dev.cel.common.ast.CelExpr;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.ManagedType;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.PluralAttribute;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import static dev.cel.common.ast.CelExpr.ExprKind.Kind.*;
+
+/**
+ * Estimates selectivity and cost of CEL predicates from cached per-column statistics so that the
+ * {@link Translator} can order AND/OR operands and pick a join or EXISTS strategy for collection paths.
+ */
+public class QueryPlanner {
+    private static final Logger logger = LoggerFactory.getLogger(QueryPlanner.class);
+
+    // Fallback estimates used when no statistics are available for a path
+    private static final double DEFAULT_EQUALITY_SELECTIVITY = 0.1;
+    private static final double DEFAULT_RANGE_SELECTIVITY = 1.0 / 3;
+    private static final double PREFIX_SELECTIVITY = 0.1;
+    private static final double CONTAINS_SELECTIVITY = 0.25;
+
+    // Relative evaluation costs: a leading-wildcard LIKE cannot use an index
+    private static final double COMPARISON_COST = 1.0;
+    private static final double PREFIX_COST = 2.0;
+    private static final double CONTAINS_COST = 5.0;
+
+    // Above this many child rows per parent a join multiplies rows enough that EXISTS is cheaper
+    private static final double EXISTS_FAN_OUT_THRESHOLD = 2.0;
+    private static final double EPSILON = 1e-6;
+
+    private final EntityManager entityManager;
+    private final Duration ttl;
+    private final Executor executor;
+    private final Map<String, ColumnStatistics> cache = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<ColumnStatistics>> refreshes = new ConcurrentHashMap<>();
+
+    public QueryPlanner(EntityManager entityManager, Duration ttl, Executor executor) {
+        this.entityManager = entityManager;
+        this.ttl = ttl;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the statistics for a dotted entity path. Expired entries are served stale while a single
+     * refresh runs on the executor; only the very first lookup of a path waits for its collection.
+     */
+    public ColumnStatistics statistics(Class<?> entityClass, String path) {
+        String key = entityClass.getName() + "#" + path;
+        ColumnStatistics cached = cache.get(key);
+        if (cached != null && cached.getCollectedAt().plus(ttl).isAfter(Instant.now())) {
+            return cached;
+        }
+        CompletableFuture<ColumnStatistics> refresh = refresh(key, entityClass, path);
+        return cached != null ? cached : refresh.join();
+    }
+
+    /**
+     * Starts collecting the statistics for a key unless a collection is already running for it.
+     */
+    private CompletableFuture<ColumnStatistics> refresh(String key, Class<?> entityClass, String path) {
+        CompletableFuture<ColumnStatistics> created = new CompletableFuture<>();
+        CompletableFuture<ColumnStatistics> running = refreshes.putIfAbsent(key, created);
+        if (running != null) {
+            return running;
+        }
+        executor.execute(() -> {
+            try {
+                ColumnStatistics stats = collect(entityClass, path);
+                cache.put(key, stats);
+                created.complete(stats);
+            } catch (Throwable t) {
+                created.completeExceptionally(t);
+            } finally {
+                refreshes.remove(key, created);
+            }
+        });
+        return created;
+    }
+
+    public void invalidate() {
+        cache.clear();
+    }
+
+    /**
+     * Orders AND operands so cheap, selective predicates come first and OR operands so cheap,
+     * likely-true predicates come first. The sort is stable, so ties keep the user's order.
+     */
+    public List<CelExpr> order(List<CelExpr> operands, boolean conjunction, Class<?> entityClass) {
+        List<CelExpr> ordered = new ArrayList<>(operands);
+        ordered.sort(Comparator.comparingDouble(operand -> rank(operand, conjunction, entityClass)));
+        logger.info("Ordered {} operands: {} -> {}", conjunction ? "AND" : "OR", operands, ordered);
+        return ordered;
+    }
+
+    /**
+     * Decides whether predicates over the given collection attributes should be evaluated in a
+     * correlated EXISTS subquery instead of a (distinct) join, based on the observed fan-out.
+     */
+    public boolean preferExists(Class<?> entityClass, Collection<String> collections) {
+        return collections.stream()
+                .map(collection -> statistics(entityClass, collection))
+                .anyMatch(stats -> stats.isKnown() && stats.getFanOut() > EXISTS_FAN_OUT_THRESHOLD);
+    }
+
+    public double selectivity(CelExpr expr, Class<?> entityClass) {
+        if (expr.getKind() == SELECT) {
+            return equalitySelectivity(expr, entityClass);
+        }
+        if (expr.getKind() != CALL) {
+            return 1.0;
+        }
+        CelExpr.CelCall call = expr.call();
+        List<CelExpr> args = call.args();
+        switch (call.function()) {
+            case "_&&_":
+                return selectivity(args.get(0), entityClass) * selectivity(args.get(1), entityClass);
+            case "_||_":
+                return 1 - (1 - selectivity(args.get(0), entityClass)) * (1 - selectivity(args.get(1), entityClass));
+            case "_==_":
+                return equalitySelectivity(args.get(0), entityClass);
+            case "_!=_":
+                return 1 - equalitySelectivity(args.get(0), entityClass);
+            case "_>_":
+            case "_>=_":
+                return rangeSelectivity(args.get(0), args.get(1), true, entityClass);
+            case "_<_":
+            case "_<=_":
+                return rangeSelectivity(args.get(0), args.get(1), false, entityClass);
+            case "@in":
+                int size = args.get(1).list().elements().size();
+                return Math.min(1.0, size * equalitySelectivity(args.get(0), entityClass));
+            case "startsWith":
+                return PREFIX_SELECTIVITY;
+            case "contains":
+                return CONTAINS_SELECTIVITY;
+            default:
+                return 1.0;
+        }
+    }
+
+    public double cost(CelExpr expr, Class<?> entityClass) {
+        if (expr.getKind() == SELECT) {
+            return COMPARISON_COST * fanOut(expr, entityClass);
+        }
+        if (expr.getKind() != CALL) {
+            return 0.0;
+        }
+        CelExpr.CelCall call = expr.call();
+        List<CelExpr> args = call.args();
+        switch (call.function()) {
+            case "_&&_":
+            case "_||_":
+                return cost(args.get(0), entityClass) + cost(args.get(1), entityClass);
+            case "startsWith":
+                return PREFIX_COST * fanOut(call.target().orElseThrow(), entityClass);
+            case "contains":
+                return CONTAINS_COST * fanOut(call.target().orElseThrow(), entityClass);
+            default:
+                return args.isEmpty() ? COMPARISON_COST : COMPARISON_COST * fanOut(args.get(0), entityClass);
+        }
+    }
+
+    private double rank(CelExpr operand, boolean conjunction, Class<?> entityClass) {
+        double selectivity = selectivity(operand, entityClass);
+        double cost = cost(operand, entityClass);
+        return conjunction
+                ? cost / Math.max(1 - selectivity, EPSILON)
+                : cost / Math.max(selectivity, EPSILON);
+    }
+
+    private double equalitySelectivity(CelExpr path, Class<?> entityClass) {
+        return knownStatistics(path, entityClass)
+                .filter(stats -> stats.getDistinctCount() > 0)
+                .map(stats -> 1.0 / stats.getDistinctCount())
+                .orElse(DEFAULT_EQUALITY_SELECTIVITY);
+    }
+
+    private double rangeSelectivity(CelExpr path, CelExpr bound, boolean greater, Class<?> entityClass) {
+        Optional<ColumnStatistics> stats = knownStatistics(path, entityClass);
+        if (stats.isEmpty() || !(stats.get().getMin() instanceof Number) || !(stats.get().getMax() instanceof Number)
+                || bound.getKind() != CONSTANT) {
+            return DEFAULT_RANGE_SELECTIVITY;
+        }
+        CelConstant constant = bound.constant();
+        double value;
+        switch (constant.getKind()) {
+            case INT64_VALUE:
+                value = constant.int64Value();
+                break;
+            case DOUBLE_VALUE:
+                value = constant.doubleValue();
+                break;
+            default:
+                return DEFAULT_RANGE_SELECTIVITY;
+        }
+        double min = ((Number) stats.get().getMin()).doubleValue();
+        double max = ((Number) stats.get().getMax()).doubleValue();
+        if (max <= min) {
+            return DEFAULT_RANGE_SELECTIVITY;
+        }
+        double fraction = greater ? (max - value) / (max - min) : (value - min) / (max - min);
+        return Math.max(0.0, Math.min(1.0, fraction));
+    }
+
+    private double fanOut(CelExpr path, Class<?> entityClass) {
+        return knownStatistics(path, entityClass)
+                .map(stats -> Math.max(1.0, stats.getFanOut()))
+                .orElse(1.0);
+    }
+
+    private Optional<ColumnStatistics> knownStatistics(CelExpr path, Class<?> entityClass) {
+        return Translator.fieldPath(path)
+                .map(name -> statistics(entityClass, name))
+                .filter(ColumnStatistics::isKnown);
+    }
+
+    /**
+     * Runs a single aggregate JPQL query for the path that also counts the root entities, left joining
+     * collections so roots without children are included. Path segments are validated against the JPA
+     * metamodel before being used in JPQL.
+     */
+    private ColumnStatistics collect(Class<?> entityClass, String path) {
+        Instant now = Instant.now();
+        try {
+            Metamodel metamodel = entityManager.getMetamodel();
+            EntityType<?> entity = metamodel.entity(entityClass);
+            StringBuilder from = new StringBuilder(" from " + entity.getName() + " e");
+            String alias = "e";
+            String column = "e";
+            boolean basic = false;
+            ManagedType<?> type = entity;
+            String[] segments = path.split("\\.");
+            for (int i = 0; i < segments.length; i++) {
+                Attribute<?, ?> attribute = type.getAttribute(segments[i]);
+                if (attribute.isCollection()) {
+                    alias = "j" + i;
+                    from.append(" left join ").append(column).append('.').append(segments[i]).append(' ').append(alias);
+                    column = alias;
+                    type = metamodel.managedType(((PluralAttribute<?, ?, ?>) attribute).getElementType().getJavaType());
+                } else {
+                    column = column + "." + segments[i];
+                    basic = attribute.getPersistentAttributeType() == Attribute.PersistentAttributeType.BASIC;
+                    if (!basic) {
+                        type = metamodel.managedType(attribute.getJavaType());
+                    }
+                }
+            }
+
+            String select = "select count(distinct e), count(" + alias + "), count(distinct " + column + ")"
+                    + (basic ? ", min(" + column + "), max(" + column + ")" : "");
+            Object[] row = entityManager.createQuery(select + from, Object[].class).getSingleResult();
+            long rootCount = ((Number) row[0]).longValue();
+            long rowCount = ((Number) row[1]).longValue();
+            double fanOut = rootCount == 0 ? 0.0 : (double) rowCount / rootCount;
+            ColumnStatistics stats = new ColumnStatistics(rowCount, ((Number) row[2]).longValue(), fanOut,
+                    basic ? row[3] : null, basic ? row[4] : null, now);
+            logger.info("Collected statistics for {}.{}: {}", entity.getName(), path, stats);
+            return stats;
+        } catch (RuntimeException e) {
+            logger.warn("Could not collect statistics for {}.{}: {}", entityClass.getSimpleName(), path, e.getMessage());
+            return ColumnStatistics.unknown(now);
+        }
+    }
+}
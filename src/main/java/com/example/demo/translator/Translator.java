@@ -7,7 +7,10 @@
  * - Operator References:
  *   - Go: https://pkg.go.dev/github.com/google/cel-go/common/operators
  *   - Java: https://javadoc.io/doc/dev.cel/cel/latest/dev/cel/parser/Operator.html
- * - Warning: This will not work with joined tables.
+ * - Collection paths (e.g. `metadata.datakey`) are resolved through a shared left join, so all conditions on
+ *   the collection apply to the same child row and entities without children can still match scalar
+ *   conditions. With a QueryPlanner the whole predicate is moved into a correlated EXISTS subquery
+ *   instead when the collection fan-out is high, which is equivalent and avoids duplicate rows.
  */
 
 package com.example.demo.translator;
@@ -21,8 +24,15 @@ import org.slf4j.LoggerFactory;
 import org.springframework.data.jpa.domain.Specification;
 
 import javax.persistence.criteria.*;
+import javax.persistence.metamodel.Attribute;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 
 import static dev.cel.common.ast.CelExpr.ExprKind.Kind.*;
@@ -31,28 +41,115 @@ public class Translator {
     private static final Logger logger = LoggerFactory.getLogger(Translator.class);
 
     public static <T> Specification<T> translate(String celExpression, Class<T> entityClass) {
-        return (Root<T> root, CriteriaQuery<?> query, CriteriaBuilder cb) -> {
-            try {
-                CelCompiler celCompiler = CelCompilerFactory.standardCelCompilerBuilder()
-                        .addVarDeclarations(new TypeGenerator(entityClass).build())
-                        .build();
-                return createPredicate(celCompiler.compile(celExpression).getAst().getExpr(), root, cb);
-            } catch (Exception e) {
-                throw new RuntimeException(e.getMessage(), e);
+        return translate(celExpression, entityClass, null);
+    }
+
+    /**
+     * Same as {@link #translate(String, Class)}, but lets the planner reorder AND/OR operands by estimated
+     * selectivity and cost and choose between a join and EXISTS for collection paths.
+     */
+    public static <T> Specification<T> translate(String celExpression, Class<T> entityClass, QueryPlanner planner) {
+        return (Root<T> root, CriteriaQuery<?> query, CriteriaBuilder cb) ->
+                toPredicate(celExpression, entityClass, planner, false, root, query, cb);
+    }
+
+    /**
+     * Builds the filter predicate for an aggregate query. Collection paths always go through EXISTS so that
+     * joins added for grouping are not multiplied by joins coming from the filter.
+     */
+    public static <T> Predicate translateForAggregation(String celExpression, Class<T> entityClass, QueryPlanner planner,
+                                                        Root<T> root, CriteriaQuery<?> query, CriteriaBuilder cb) {
+        return toPredicate(celExpression, entityClass, planner, true, root, query, cb);
+    }
+
+    /**
+     * Resolves a dotted path against the root; collection attributes are left joined once via {@code joins}.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T, Y> Path<Y> resolvePath(Root<T> root, Map<String, Join<T, ?>> joins, String dottedPath) {
+        String[] segments = dottedPath.split("\\.");
+        Attribute<? super T, ?> attribute = root.getModel().getAttribute(segments[0]);
+        Path<?> path = attribute.isCollection()
+                ? joins.computeIfAbsent(segments[0], name -> root.join(name, JoinType.LEFT))
+                : root.get(segments[0]);
+        for (int i = 1; i < segments.length; i++) {
+            path = path.get(segments[i]);
+        }
+        return (Path<Y>) path;
+    }
+
+    private static <T> Predicate toPredicate(String celExpression, Class<T> entityClass, QueryPlanner planner,
+                                             boolean forceExists, Root<T> root, CriteriaQuery<?> query, CriteriaBuilder cb) {
+        try {
+            CelCompiler celCompiler = CelCompilerFactory.standardCelCompilerBuilder()
+                    .addVarDeclarations(new TypeGenerator(entityClass).build())
+                    .build();
+            CelExpr expr = celCompiler.compile(celExpression).getAst().getExpr();
+            Set<String> collections = referencedCollections(expr, root);
+            if (!collections.isEmpty()
+                    && (forceExists || (planner != null && planner.preferExists(entityClass, collections)))) {
+                logger.info("Using EXISTS for collections {}", collections);
+                Subquery<Integer> subquery = query.subquery(Integer.class);
+                Root<T> correlated = subquery.correlate(root);
+                subquery.select(cb.literal(1))
+                        .where(createPredicate(expr, new Context<>(correlated, entityClass, planner), cb));
+                return cb.exists(subquery);
             }
-        };
+            if (!collections.isEmpty()) {
+                query.distinct(true);
+            }
+            return createPredicate(expr, new Context<>(root, entityClass, planner), cb);
+        } catch (Exception e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the dotted field path (e.g. {@code metadata.datakey}) an expression refers to, if it is a path.
+     */
+    static Optional<String> fieldPath(CelExpr expr) {
+        switch (expr.getKind()) {
+            case IDENT:
+                return Optional.of(expr.ident().name());
+            case SELECT:
+                return fieldPath(expr.select().operand()).map(operand -> operand + "." + expr.select().field());
+            default:
+                return Optional.empty();
+        }
+    }
+
+    private static <T> Set<String> referencedCollections(CelExpr expr, Root<T> root) {
+        Set<String> paths = new LinkedHashSet<>();
+        collectPaths(expr, paths);
+        return paths.stream()
+                .map(path -> path.split("\\.")[0])
+                .filter(name -> root.getModel().getAttributes().stream()
+                        .anyMatch(attribute -> attribute.getName().equals(name) && attribute.isCollection()))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private static void collectPaths(CelExpr expr, Set<String> paths) {
+        Optional<String> path = fieldPath(expr);
+        if (path.isPresent()) {
+            paths.add(path.get());
+        } else if (expr.getKind() == CALL) {
+            expr.call().target().ifPresent(target -> collectPaths(target, paths));
+            expr.call().args().forEach(arg -> collectPaths(arg, paths));
+        } else if (expr.getKind() == LIST) {
+            expr.list().elements().forEach(element -> collectPaths(element, paths));
+        }
     }
 
-    private static <T> Predicate createPredicate(CelExpr expr, Root<T> root, CriteriaBuilder cb) {
+    private static <T> Predicate createPredicate(CelExpr expr, Context<T> context, CriteriaBuilder cb) {
         logger.info("Processing expression of kind: {}", expr.getKind());
         switch (expr.getKind()) {
             case CALL:
-                return processFunctionCall(expr.call(), root, cb);
+                return processFunctionCall(expr.call(), context, cb);
             case IDENT:
                 return cb.conjunction();
             case SELECT:
                 return cb.equal(
-                        resolveFieldPath(expr.select().operand(), root).get(expr.select().field()),
+                        resolveFieldPath(expr.select().operand(), context).get(expr.select().field()),
                         extractConstant(expr.select().operand())
                 );
             default:
@@ -60,74 +157,80 @@ public class Translator {
         }
     }
 
-    private static <T> Predicate processFunctionCall(CelExpr.CelCall callExpr, Root<T> root, CriteriaBuilder cb) {
+    private static <T> Predicate processFunctionCall(CelExpr.CelCall callExpr, Context<T> context, CriteriaBuilder cb) {
         String operator = callExpr.function();
         List<CelExpr> arguments = callExpr.args();
         Optional<CelExpr> target = callExpr.target();
         logger.info("Handling Function: {} \nArguments: {} \nTarget: {}", operator, arguments, target);
         switch (operator) {
             case "_&&_":
-                return cb.and(
-                        createPredicate(arguments.get(0), root, cb),
-                        createPredicate(arguments.get(1), root, cb)
-                );
             case "_||_":
-                return cb.or(
-                        createPredicate(arguments.get(0), root, cb),
-                        createPredicate(arguments.get(1), root, cb)
-                );
+                boolean conjunction = operator.equals("_&&_");
+                Predicate[] operands = context.order(flatten(operator, arguments), conjunction).stream()
+                        .map(operand -> createPredicate(operand, context, cb))
+                        .toArray(Predicate[]::new);
+                return conjunction ? cb.and(operands) : cb.or(operands);
             case "_==_":
                 return cb.equal(
-                        resolveFieldPath(arguments.get(0), root),
+                        resolveFieldPath(arguments.get(0), context),
                         extractConstant(arguments.get(1))
                 );
             case "_!=_":
-                Path<?> resolvedFieldPath = resolveFieldPath(arguments.get(0), root);
+                Path<?> resolvedFieldPath = resolveFieldPath(arguments.get(0), context);
                 Object value = extractConstant(arguments.get(1));
                 return cb.notEqual(resolvedFieldPath, value);
             case "_>_":
                 return cb.gt(
-                        resolveFieldPath(arguments.get(0), root),
+                        resolveFieldPath(arguments.get(0), context),
                         (Number) extractConstant(arguments.get(1))
                 );
             case "_>=_":
                 return cb.ge(
-                        resolveFieldPath(arguments.get(0), root),
+                        resolveFieldPath(arguments.get(0), context),
                         (Number) extractConstant(arguments.get(1))
                 );
             case "_<_":
                 return cb.lt(
-                        resolveFieldPath(arguments.get(0), root),
+                        resolveFieldPath(arguments.get(0), context),
                         (Number) extractConstant(arguments.get(1))
                 );
             case "_<=_":
                 return cb.le(
-                        resolveFieldPath(arguments.get(0), root),
+                        resolveFieldPath(arguments.get(0), context),
                         (Number) extractConstant(arguments.get(1))
                 );
             case "@in":
-                CriteriaBuilder.In<Object> inPredicate = cb.in(resolveFieldPath(arguments.get(0), root));
+                CriteriaBuilder.In<Object> inPredicate = cb.in(resolveFieldPath(arguments.get(0), context));
                 arguments.get(1).list().elements().stream().map(Translator::extractConstant).forEach(inPredicate::value);
                 return inPredicate;
             case "startsWith":
-                return cb.like(resolveFieldPath(target.orElseThrow(), root), arguments.get(0).constant().stringValue() +"%");
+                return cb.like(resolveFieldPath(target.orElseThrow(), context), arguments.get(0).constant().stringValue() +"%");
             case "contains":
-                return cb.like(resolveFieldPath(target.orElseThrow(), root), "%" + arguments.get(0).constant().stringValue() +"%");
+                return cb.like(resolveFieldPath(target.orElseThrow(), context), "%" + arguments.get(0).constant().stringValue() +"%");
             default:
                 throw new UnsupportedOperationException("Unsupported CEL operator: " + operator);
         }
     }
 
-    private static <T, Y> Path<Y> resolveFieldPath(CelExpr expr, Root<T> root) {
-        logger.info("Resolving path: {}", expr);
-        switch (expr.getKind()) {
-            case IDENT:
-                return root.get(expr.ident().name());
-            case SELECT:
-                return resolveFieldPath(expr.select().operand(), root).get(expr.select().field());
-            default:
-                throw new IllegalArgumentException("Unsupported field path expression: " + expr.getKind());
+    /**
+     * Flattens a chain of the same boolean operator, e.g. {@code a && (b && c)} into {@code [a, b, c]}.
+     */
+    private static List<CelExpr> flatten(String operator, List<CelExpr> arguments) {
+        List<CelExpr> operands = new ArrayList<>();
+        for (CelExpr argument : arguments) {
+            if (argument.getKind() == CALL && argument.call().function().equals(operator)) {
+                operands.addAll(flatten(operator, argument.call().args()));
+            } else {
+                operands.add(argument);
+            }
         }
+        return operands;
+    }
+
+    private static <T, Y> Path<Y> resolveFieldPath(CelExpr expr, Context<T> context) {
+        logger.info("Resolving path: {}", expr);
+        return context.resolve(fieldPath(expr)
+                .orElseThrow(() -> new IllegalArgumentException("Unsupported field path expression: " + expr.getKind())));
     }
 
     private static Object extractConstant(CelExpr node) {
@@ -148,4 +251,31 @@ public class Translator {
         }
         throw new IllegalArgumentException("Expected a constant value but got: " + node);
     }
-}
\ No newline at end of file
+
+    /**
+     * Per-translation state: the root being filtered, the joins created so far and the optional planner.
+     */
+    private static class Context<T> {
+        private final Root<T> root;
+        private final Class<T> entityClass;
+        private final QueryPlanner planner;
+        private final Map<String, Join<T, ?>> joins = new HashMap<>();
+
+        Context(Root<T> root, Class<T> entityClass, QueryPlanner planner) {
+            this.root = root;
+            this.entityClass = entityClass;
+            this.planner = planner;
+        }
+
+        List<CelExpr> order(List<CelExpr> operands, boolean conjunction) {
+            return planner == null ? operands : planner.order(operands, conjunction, entityClass);
+        }
+
+        /**
+         * Resolves a dotted path; collection attributes are joined once and shared by every condition.
+         */
+        <Y> Path<Y> resolve(String dottedPath) {
+            return resolvePath(root, joins, dottedPath);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.demo;
+
+import com.example.demo.controller.ServiceFactory;
+import com.example.demo.entity.Content;
+import com.example.demo.entity.Metadata;
+import com.example.demo.service.BaseService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Transactional
+public class AggregationTests {
+
+    @Autowired
+    private ServiceFactory services;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    public void countsContentsPerMetadataKey() {
+        persist("agg-a", LocalDateTime.of(2001, 1, 1, 10, 0), "author", "Ann", "category", "red", "category", "blue");
+        persist("agg-b", LocalDateTime.of(2001, 1, 1, 11, 0), "author", "Ben", "category", "red");
+        persist("agg-c", LocalDateTime.of(2001, 1, 2, 10, 0), "category", "green");
+
+        BaseService<?> content = services.getService("content");
+        List<Map<String, Object>> rows = content.aggregate("name.startsWith('agg-')", List.of("metadata.datakey"),
+                List.of("countDistinct(id)", "count", "count(metadata.id)"));
+
+        assertEquals(2, rows.size());
+        assertEquals("author", rows.get(0).get("metadata.datakey"));
+        assertEquals(2L, rows.get(0).get("countDistinct(id)"));
+        assertEquals(2L, rows.get(0).get("count"));
+        assertEquals(2L, rows.get(0).get("count(metadata.id)"));
+        assertEquals("category", rows.get(1).get("metadata.datakey"));
+        assertEquals(3L, rows.get(1).get("countDistinct(id)"));
+        assertEquals(3L, rows.get(1).get("count"));
+        assertEquals(4L, rows.get(1).get("count(metadata.id)"));
+    }
+
+    @Test
+    public void filterOnCollectionDoesNotMultiplyGroups() {
+        persist("agg-a", LocalDateTime.of(2001, 1, 1, 10, 0), "author", "Ann", "category", "red", "category", "blue");
+        persist("agg-b", LocalDateTime.of(2001, 1, 1, 11, 0), "author", "Ann", "category", "red");
+        persist("agg-c", LocalDateTime.of(2001, 1, 2, 10, 0), "author", "Ben");
+
+        BaseService<?> content = services.getService("content");
+        List<Map<String, Object>> rows = content.aggregate(
+                "name.startsWith('agg-') && metadata.datavalue == 'Ann'", List.of(),
+                List.of("count", "min(name)", "max(name)"));
+
+        assertEquals(1, rows.size());
+        assertEquals(2L, rows.get(0).get("count"));
+        assertEquals("agg-a", rows.get(0).get("min(name)"));
+        assertEquals("agg-b", rows.get(0).get("max(name)"));
+    }
+
+    @Test
+    public void buildsPerDayHistogram() {
+        persist("agg-a", LocalDateTime.of(2001, 1, 1, 10, 0));
+        persist("agg-b", LocalDateTime.of(2001, 1, 1, 23, 59));
+        persist("agg-c", LocalDateTime.of(2001, 1, 3, 0, 0));
+
+        BaseService<?> content = services.getService("content");
+        List<Map<String, Object>> rows = content.aggregate(
+                "name.startsWith('agg-')", List.of("day(createdAt)"), List.of());
+
+        assertEquals(2, rows.size());
+        assertEquals(LocalDate.of(2001, 1, 1), rows.get(0).get("day(createdAt)"));
+        assertEquals(2L, rows.get(0).get("count"));
+        assertEquals(LocalDate.of(2001, 1, 3), rows.get(1).get("day(createdAt)"));
+        assertEquals(1L, rows.get(1).get("count"));
+    }
+
+    @Test
+    public void rejectsUnknownPaths() {
+        BaseService<?> content = services.getService("content");
+        assertThrows(IllegalArgumentException.class,
+                () -> content.aggregate(null, List.of("unknown"), List.of("count")));
+    }
+
+    /**
+     * Persists a content with the given metadata key/value pairs.
+     */
+    private void persist(String name, LocalDateTime createdAt, String... keyValues) {
+        Content content = new Content(createdAt, name);
+        for (int i = 0; i < keyValues.length; i += 2) {
+            content.getMetadata().add(new Metadata(content, keyValues[i], keyValues[i + 1]));
+        }
+        entityManager.persist(content);
+        entityManager.flush();
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.demo;
+
+import com.example.demo.entity.Content;
+import com.example.demo.entity.Metadata;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+public class BinaryFormatTests {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinaryFormatTests.class);
+    private static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+    private static final int ROWS = 20_000;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper json;
+
+    @Autowired
+    private MappingJackson2CborHttpMessageConverter cborConverter;
+
+    @Autowired
+    private MappingJackson2SmileHttpMessageConverter smileConverter;
+
+    @Test
+    public void negotiatesCbor() throws Exception {
+        assertDecodes(MediaType.APPLICATION_CBOR, cborConverter.getObjectMapper());
+    }
+
+    @Test
+    public void negotiatesSmile() throws Exception {
+        assertDecodes(SMILE, smileConverter.getObjectMapper());
+    }
+
+    @Test
+    public void wildcardStillReturnsJson() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/content").param("filter", "id <= 2").accept(MediaType.ALL))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertTrue(MediaType.APPLICATION_JSON.isCompatibleWith(MediaType.parseMediaType(result.getResponse().getContentType())));
+        JsonNode rows = json.readTree(result.getResponse().getContentAsByteArray());
+        assertEquals(2, rows.size());
+        assertTrue(rows.get(0).get("createdAt").isTextual());
+    }
+
+    @Test
+    public void binaryFormatsAreSmallerThanJson() throws Exception {
+        List<Content> contents = contents();
+        int jsonSize = json.writeValueAsBytes(contents).length;
+        int cborSize = cborConverter.getObjectMapper().writeValueAsBytes(contents).length;
+        int smileSize = smileConverter.getObjectMapper().writeValueAsBytes(contents).length;
+        logger.info("{} rows: json={} bytes, cbor={} bytes, smile={} bytes", ROWS, jsonSize, cborSize, smileSize);
+
+        assertTrue(cborSize < jsonSize, "CBOR should be smaller than JSON");
+        assertTrue(smileSize < jsonSize, "Smile should be smaller than JSON");
+    }
+
+    private void assertDecodes(MediaType mediaType, ObjectMapper mapper) throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/content").param("filter", "id <= 2").accept(mediaType))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertEquals(mediaType, MediaType.parseMediaType(result.getResponse().getContentType()));
+
+        JsonNode rows = mapper.readTree(result.getResponse().getContentAsByteArray());
+        assertEquals(2, rows.size());
+        assertTrue(rows.get(0).get("createdAt").isArray());
+
+        Content[] contents = mapper.readValue(result.getResponse().getContentAsByteArray(), Content[].class);
+        assertEquals(2, contents.length);
+        for (Content content : contents) {
+            assertNotNull(content.getCreatedAt());
+            assertTrue(content.getName().startsWith("Document"));
+            assertFalse(content.getMetadata().isEmpty());
+        }
+    }
+
+    private List<Content> contents() {
+        List<Content> contents = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (long i = 0; i < ROWS; i++) {
+            Content content = new Content(now.minusMinutes(i), "Document " + i);
+            content.setId(i);
+            content.getMetadata().add(new Metadata(content, "author", "Alice"));
+            content.getMetadata().add(new Metadata(content, "category", "red"));
+            contents.add(content);
+        }
+        return contents;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.demo;
+
+import com.example.demo.config.BinaryFormatConfig;
+import com.example.demo.entity.Content;
+import com.example.demo.entity.Metadata;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Warmed, repeated encode timing of the JSON, CBOR and Smile paths over a large result set. Not part of the
+ * test run (the class name does not match the surefire patterns); run it after {@code mvn test-compile} with
+ * <pre>
+ * java -cp "target/classes:target/test-classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" \
+ *     com.example.demo.EncodingBenchmark [rows]
+ * </pre>
+ */
+public class EncodingBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 10;
+    private static final int MEASURED_ITERATIONS = 20;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        List<Content> contents = contents(rows);
+
+        BinaryFormatConfig config = new BinaryFormatConfig();
+        ObjectMapper json = Jackson2ObjectMapperBuilder.json().build();
+        ObjectMapper cbor = config.cborHttpMessageConverter(Jackson2ObjectMapperBuilder.json()).getObjectMapper();
+        ObjectMapper smile = config.smileHttpMessageConverter(Jackson2ObjectMapperBuilder.json()).getObjectMapper();
+
+        System.out.printf("%d rows, %d warm-up and %d measured iterations%n", rows, WARMUP_ITERATIONS, MEASURED_ITERATIONS);
+        System.out.printf("%-6s %12s %10s %12s %10s%n", "format", "bytes", "median ms", "rows/s", "MB/s");
+        measure("json", json, contents);
+        measure("cbor", cbor, contents);
+        measure("smile", smile, contents);
+    }
+
+    private static void measure(String format, ObjectMapper mapper, List<Content> contents) throws Exception {
+        int size = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            size = mapper.writeValueAsBytes(contents).length;
+        }
+        long[] nanos = new long[MEASURED_ITERATIONS];
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            mapper.writeValueAsBytes(contents);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        double seconds = nanos[MEASURED_ITERATIONS / 2] / 1e9;
+        System.out.printf("%-6s %12d %10.1f %12.0f %10.1f%n",
+                format, size, seconds * 1e3, contents.size() / seconds, size / seconds / 1e6);
+    }
+
+    private static List<Content> contents(int rows) {
+        List<Content> contents = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (long i = 0; i < rows; i++) {
+            Content content = new Content(now.minusMinutes(i), "Document " + i);
+            content.setId(i);
+            content.getMetadata().add(new Metadata(content, "author", "Alice"));
+            content.getMetadata().add(new Metadata(content, "category", "red"));
+            contents.add(content);
+        }
+        return contents;
+    }
+}
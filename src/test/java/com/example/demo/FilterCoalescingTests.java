@@ -0,0 +1,102 @@
+package com.example.demo;
+
+import com.example.demo.entity.Content;
+import com.example.demo.repository.ContentRepository;
+import com.example.demo.service.BaseService;
+import com.example.demo.service.SingleFlight;
+import com.example.demo.translator.Translator;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.EntityManager;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class FilterCoalescingTests {
+
+    @Autowired
+    private ContentRepository contentRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    public void whitespaceVariantsShareOneQuery() throws Exception {
+        AtomicInteger queries = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // Blocks the leader inside findAll(spec) until the waiter has joined its flight
+        ContentRepository blocking = (ContentRepository) Proxy.newProxyInstance(
+                ContentRepository.class.getClassLoader(), new Class<?>[]{ContentRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("findAll") && args != null && args.length == 1
+                            && args[0] instanceof Specification) {
+                        queries.incrementAndGet();
+                        started.countDown();
+                        release.await();
+                    }
+                    try {
+                        return method.invoke(contentRepository, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        SingleFlight<String, List<Content>> flight = new SingleFlight<>(Duration.ofSeconds(5));
+        BaseService<Content> service = new BaseService<>(blocking, entityManager, Content.class, null, flight);
+        assertEquals(service.flightKey("id <= 2 && name.startsWith('Document')"),
+                service.flightKey("  id <= 2\n&&   name.startsWith('Document') "));
+        assertNotEquals(service.flightKey("name == 'a b'"), service.flightKey("name == 'a  b'"));
+        String filter = "id <= 2 && name.startsWith('Document')";
+        List<Content> expected = contentRepository.findAll(Translator.translate(filter, Content.class));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<Content>> leader = executor.submit(
+                    () -> service.filterEntity(filter));
+            started.await();
+            Future<List<Content>> waiter = executor.submit(
+                    () -> service.filterEntity("  id <= 2\n&&   name.startsWith('Document') "));
+            SingleFlightTests.awaitWaiters(flight, 1);
+            release.countDown();
+
+            List<Content> leaderResult = leader.get();
+            assertEquals(expected.size(), leaderResult.size());
+            assertSame(leaderResult, waiter.get());
+            assertEquals(1, queries.get());
+            // Metadata was fetched with the query, outside any transaction or open session
+            Content first = leaderResult.get(0);
+            long metadataCount = entityManager
+                    .createQuery("select count(m) from Metadata m where m.content.id = :id", Long.class)
+                    .setParameter("id", first.getId())
+                    .getSingleResult();
+            assertEquals(metadataCount, first.getMetadata().size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void commentsDoNotMergeDifferentFilters() throws Exception {
+        BaseService<?> service = new BaseService<>(contentRepository, entityManager, Content.class, null,
+                new SingleFlight<>(Duration.ofSeconds(5)));
+        // The comment runs to the end of the line, so only the first filter keeps the '|| id == 1'
+        String withNewline = service.flightKey("name == 'x' // n\n|| id == 1");
+        String onOneLine = service.flightKey("name == 'x' // n || id == 1");
+
+        assertNotEquals(withNewline, onOneLine);
+        assertEquals(service.flightKey("name == 'x' || id == 1"), withNewline);
+        assertEquals(service.flightKey("name == 'x'"), onOneLine);
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.demo;
+
+import com.example.demo.entity.Content;
+import com.example.demo.repository.ContentRepository;
+import com.example.demo.translator.ColumnStatistics;
+import com.example.demo.translator.QueryPlanner;
+import com.example.demo.translator.Translator;
+import com.example.demo.translator.TypeGenerator;
+import dev.cel.common.ast.CelExpr;
+import dev.cel.compiler.CelCompiler;
+import dev.cel.compiler.CelCompilerFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Root;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Transactional
+public class QueryPlannerTests {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private ContentRepository contentRepository;
+
+    private QueryPlanner planner;
+
+    @BeforeEach
+    public void setup() {
+        planner = new QueryPlanner(entityManager, Duration.ofMinutes(5), Runnable::run);
+    }
+
+    @Test
+    public void collectsColumnStatistics() {
+        ColumnStatistics name = planner.statistics(Content.class, "name");
+        assertEquals(5, name.getRowCount());
+        assertEquals(5, name.getDistinctCount());
+        assertEquals("Document 1", name.getMin());
+
+        ColumnStatistics datakey = planner.statistics(Content.class, "metadata.datakey");
+        assertEquals(20, datakey.getRowCount());
+        assertEquals(2, datakey.getDistinctCount());
+        assertEquals(4.0, datakey.getFanOut());
+    }
+
+    @Test
+    public void servesStaleStatisticsWhileOneRefreshRuns() {
+        List<Runnable> pending = new ArrayList<>();
+        AtomicBoolean direct = new AtomicBoolean(true);
+        QueryPlanner expiring = new QueryPlanner(entityManager, Duration.ZERO,
+                task -> { if (direct.get()) task.run(); else pending.add(task); });
+
+        ColumnStatistics first = expiring.statistics(Content.class, "name");
+        direct.set(false);
+        assertSame(first, expiring.statistics(Content.class, "name"));
+        assertSame(first, expiring.statistics(Content.class, "name"));
+        assertEquals(1, pending.size());
+
+        pending.get(0).run();
+        ColumnStatistics refreshed = expiring.statistics(Content.class, "name");
+        assertNotSame(first, refreshed);
+        assertEquals(first.getRowCount(), refreshed.getRowCount());
+    }
+
+    @Test
+    public void ordersSelectiveCheapConjunctsFirst() throws Exception {
+        CelExpr expr = compile("name.contains('Document') && id == 5");
+        List<CelExpr> ordered = planner.order(expr.call().args(), true, Content.class);
+        assertEquals("_==_", ordered.get(0).call().function());
+        assertEquals("contains", ordered.get(1).call().function());
+    }
+
+    @Test
+    public void prefersExistsForHighFanOut() {
+        assertTrue(planner.preferExists(Content.class, Set.of("metadata")));
+    }
+
+    @Test
+    public void metadataConditionsMatchSameRowWithoutDuplicates() {
+        List<Content> results = contentRepository.findAll(Translator.translate(
+                "metadata.datakey == 'author' && metadata.datavalue == 'Alice'", Content.class, planner));
+        assertEquals(2, results.size());
+
+        List<Content> joined = contentRepository.findAll(Translator.translate(
+                "metadata.datakey == 'author' && metadata.datavalue == 'Alice'", Content.class));
+        assertEquals(2, joined.size());
+
+        // Every content has three 'category' rows, so a join without DISTINCT would return 15
+        assertEquals(5, contentRepository.findAll(Translator.translate(
+                "metadata.datakey == 'category'", Content.class, planner)).size());
+        assertEquals(5, contentRepository.findAll(Translator.translate(
+                "metadata.datakey == 'category'", Content.class)).size());
+    }
+
+    @Test
+    public void plannerChoosesExistsAndJoinPathAddsDistinct() {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<Content> existsQuery = cb.createQuery(Content.class);
+        Root<Content> existsRoot = existsQuery.from(Content.class);
+        Translator.translate("metadata.datakey == 'author'", Content.class, planner)
+                .toPredicate(existsRoot, existsQuery, cb);
+        assertTrue(existsRoot.getJoins().isEmpty());
+        assertFalse(existsQuery.isDistinct());
+
+        CriteriaQuery<Content> joinQuery = cb.createQuery(Content.class);
+        Root<Content> joinRoot = joinQuery.from(Content.class);
+        Translator.translate("metadata.datakey == 'author'", Content.class)
+                .toPredicate(joinRoot, joinQuery, cb);
+        assertEquals(1, joinRoot.getJoins().size());
+        assertEquals(JoinType.LEFT, joinRoot.getJoins().iterator().next().getJoinType());
+        assertTrue(joinQuery.isDistinct());
+    }
+
+    @Test
+    public void orWithScalarKeepsContentWithoutMetadata() {
+        entityManager.persist(new Content(LocalDateTime.now(), "Lonely"));
+        entityManager.flush();
+
+        String filter = "name == 'Lonely' || metadata.datakey == 'author'";
+        assertEquals(6, contentRepository.findAll(Translator.translate(filter, Content.class, planner)).size());
+        assertEquals(6, contentRepository.findAll(Translator.translate(filter, Content.class)).size());
+    }
+
+    private CelExpr compile(String expression) throws Exception {
+        CelCompiler celCompiler = CelCompilerFactory.standardCelCompilerBuilder()
+                .addVarDeclarations(new TypeGenerator(Content.class).build())
+                .build();
+        return celCompiler.compile(expression).getAst().getExpr();
+    }
+}
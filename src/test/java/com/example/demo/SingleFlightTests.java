@@ -0,0 +1,107 @@
+package com.example.demo;
+
+import com.example.demo.service.SingleFlight;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTests {
+
+    @Test
+    public void concurrentCallsShareOneExecution() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(Duration.ofSeconds(5));
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<String> leader = executor.submit(() -> flight.execute("content:id == 1", () -> {
+                started.countDown();
+                release.await();
+                return "result-" + executions.incrementAndGet();
+            }));
+            started.await();
+            List<Future<String>> waiters = List.of(
+                    executor.submit(() -> flight.execute("content:id == 1", () -> "result-" + executions.incrementAndGet())),
+                    executor.submit(() -> flight.execute("content:id == 1", () -> "result-" + executions.incrementAndGet())));
+            awaitWaiters(flight, 2);
+            release.countDown();
+
+            assertEquals("result-1", leader.get());
+            for (Future<String> waiter : waiters) {
+                assertEquals("result-1", waiter.get());
+            }
+            assertEquals(1, executions.get());
+            assertEquals(0, flight.waiterCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void errorsPropagateToWaiters() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(Duration.ofSeconds(5));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(() -> flight.execute("key", () -> {
+                started.countDown();
+                release.await();
+                throw new IllegalArgumentException("bad filter");
+            }));
+            started.await();
+            Future<String> waiter = executor.submit(() -> flight.execute("key", () -> "unused"));
+            awaitWaiters(flight, 1);
+            release.countDown();
+
+            assertInstanceOf(IllegalArgumentException.class, assertThrows(Exception.class, leader::get).getCause());
+            assertInstanceOf(IllegalArgumentException.class, assertThrows(Exception.class, waiter::get).getCause());
+
+            // Nothing is cached once the flight is done
+            assertEquals("fresh", flight.execute("key", () -> "fresh"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void waitersTimeOut() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(Duration.ofMillis(50));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> flight.execute("key", () -> {
+                started.countDown();
+                release.await();
+                return "late";
+            }));
+            started.await();
+            assertThrows(TimeoutException.class, () -> flight.execute("key", () -> "unused"));
+            release.countDown();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    static void awaitWaiters(SingleFlight<?, ?> flight, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (flight.waiterCount() < expected) {
+            if (System.nanoTime() > deadline) {
+                fail("Expected " + expected + " waiters but found " + flight.waiterCount());
+            }
+            Thread.sleep(1);
+        }
+    }
+}